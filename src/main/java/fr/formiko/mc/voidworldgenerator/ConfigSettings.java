@@ -10,6 +10,14 @@ import org.bukkit.configuration.file.FileConfiguration;
 public class ConfigSettings {
     private Registry<Biome> biomeRegistry;
     private Map<String, BiomeAndSpawn> worldsSettings;
+    private boolean regionIslandLayout;
+    private int islandsPerRegionAxis;
+    private boolean islandCohortGrouping;
+    private boolean backupsEnabled;
+    private int backupIntervalMinutes;
+    private int backupMaxAgeDays;
+    private int backupIslandRadius;
+    private int restoreBlocksPerTick;
     public ConfigSettings() {
         initBiomeRegistry();
 
@@ -41,9 +49,35 @@ public class ConfigSettings {
             worldsSettings.put("*", defaultBiomeAndSpawn());
         }
 
+        initIslandLayout(config);
+        initBackups(config);
+
         VoidWorldGeneratorPlugin.getInstance().getLogger().info("Config loaded: " + worldsSettings);
     }
 
+    private void initIslandLayout(FileConfiguration config) {
+        regionIslandLayout = "region".equalsIgnoreCase(config.getString("islands.layout", "random"));
+        islandsPerRegionAxis = config.getInt("islands.islandsPerRegionAxis", 2);
+        // Islands cells must split a region file into whole chunks & keep islands at least MIN_DISTANCE apart
+        if (islandsPerRegionAxis < 1 || IslandManager.REGION_SIZE % islandsPerRegionAxis != 0
+                || IslandManager.REGION_SIZE / islandsPerRegionAxis < IslandManager.MIN_DISTANCE) {
+            VoidWorldGeneratorPlugin.getInstance().getLogger()
+                    .warning(() -> "Invalid islands.islandsPerRegionAxis: " + islandsPerRegionAxis + ", using 2.");
+            islandsPerRegionAxis = 2;
+        }
+        islandCohortGrouping = config.getBoolean("islands.cohortGrouping", true);
+    }
+
+    private void initBackups(FileConfiguration config) {
+        backupsEnabled = config.getBoolean("backups.enabled", false);
+        backupIntervalMinutes = Math.max(1, config.getInt("backups.intervalMinutes", 5));
+        backupMaxAgeDays = Math.max(1, config.getInt("backups.maxAgeDays", 7));
+        // Backup areas of 2 islands must not overlap, islands are at least MIN_DISTANCE apart
+        int maxRadius = (IslandManager.MIN_DISTANCE - IslandManager.ISLAND_SIZE) / 2;
+        backupIslandRadius = Math.max(0, Math.min(maxRadius, config.getInt("backups.islandRadius", 48)));
+        restoreBlocksPerTick = Math.max(1, config.getInt("backups.restoreBlocksPerTick", 16384));
+    }
+
     private BiomeAndSpawn defaultBiomeAndSpawn() { return new BiomeAndSpawn(Biome.THE_VOID, 0, 64, 0); }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
@@ -67,6 +101,14 @@ public class ConfigSettings {
     public int getSpawnX(String world) { return worldsSettings.getOrDefault(world, worldsSettings.get("*")).x; }
     public int getSpawnY(String world) { return worldsSettings.getOrDefault(world, worldsSettings.get("*")).y; }
     public int getSpawnZ(String world) { return worldsSettings.getOrDefault(world, worldsSettings.get("*")).z; }
+    public boolean isRegionIslandLayout() { return regionIslandLayout; }
+    public int getIslandsPerRegionAxis() { return islandsPerRegionAxis; }
+    public boolean isIslandCohortGrouping() { return islandCohortGrouping; }
+    public boolean isBackupsEnabled() { return backupsEnabled; }
+    public int getBackupIntervalMinutes() { return backupIntervalMinutes; }
+    public int getBackupMaxAgeDays() { return backupMaxAgeDays; }
+    public int getBackupIslandRadius() { return backupIslandRadius; }
+    public int getRestoreBlocksPerTick() { return restoreBlocksPerTick; }
 
     private record BiomeAndSpawn(Biome biome, int x, int y, int z) {}
 }
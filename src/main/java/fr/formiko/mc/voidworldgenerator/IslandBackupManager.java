@@ -0,0 +1,757 @@
+package fr.formiko.mc.voidworldgenerator;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.*;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.player.PlayerBucketEmptyEvent;
+import org.bukkit.event.player.PlayerBucketFillEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Incremental per-island backups.
+ * Island chunks are marked dirty when their blocks change, and only dirty chunks are saved on the next snapshot.
+ * Each snapshot is a compressed file backups/&lt;owner uuid&gt;/&lt;time in ms&gt;.dat.gz in the plugin folder.
+ * A base snapshot of every island chunk (base.dat.gz) is saved the first time the island changes or its owner joins.
+ * Snapshots older than backups.maxAgeDays are merged into the base, so it is the oldest kept state of the island.
+ * A chunk is restored from the latest snapshot that contains it before the requested time, or from the base snapshot.
+ */
+public class IslandBackupManager implements Listener {
+    private static final String SNAPSHOT_EXTENSION = ".dat.gz";
+    private static final String BASE_FILE = "base" + SNAPSHOT_EXTENSION;
+    private static final int FORMAT_VERSION = 1;
+    // Give up a restore if a chunk can't be loaded for that long
+    private static final long RESTORE_LOAD_TIMEOUT_TICKS = 20L * 60;
+    private static final long COMPACT_INTERVAL_TICKS = 20L * 60 * 60;
+    private final VoidWorldGeneratorPlugin plugin;
+    private final IslandManager islandManager;
+    private final File backupFolder;
+    // Every read & write of backup files, so that merging old snapshots never races with a rollback
+    private final Object fileLock;
+    // Only used from the main thread
+    private final Map<UUID, Set<Long>> dirtyChunks;
+    // Dirty chunks that are being saved, so that they can be saved synchronously if the plugin is disabled before
+    private final Set<PendingSnapshot> pendingSnapshots;
+    // Owners whose base snapshot exists or is being saved, only used from the main thread
+    private final Set<UUID> ownersWithBase;
+    private final Set<UUID> restoringIslands;
+
+    public IslandBackupManager(VoidWorldGeneratorPlugin plugin, IslandManager islandManager) {
+        this.plugin = plugin;
+        this.islandManager = islandManager;
+        this.backupFolder = new File(plugin.getDataFolder(), "backups");
+        this.fileLock = new Object();
+        this.dirtyChunks = new HashMap<>();
+        this.pendingSnapshots = ConcurrentHashMap.newKeySet();
+        this.ownersWithBase = new HashSet<>();
+        this.restoringIslands = ConcurrentHashMap.newKeySet();
+
+        long interval = 20L * 60 * plugin.getConfigSettings().getBackupIntervalMinutes();
+        plugin.getServer().getScheduler().runTaskTimer(plugin, this::snapshotDirtyIslands, interval, interval);
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::compactSnapshots, 20L * 60, COMPACT_INTERVAL_TICKS);
+    }
+
+    // Dirty chunks tracking ---------------------------------------------------------------------------------------------
+
+    private void markDirty(Block block) { markDirty(block.getWorld(), block.getX(), block.getZ()); }
+
+    private void markDirty(World world, int x, int z) {
+        UUID owner = islandManager.getIslandOwnerAt(world, x, z, plugin.getConfigSettings().getBackupIslandRadius());
+        if (owner != null) {
+            // Loaded chunks are copied now, before most changes are applied.
+            // BlockPlaceEvent is fired once the block is placed, so in that case the base contains the first change.
+            ensureBaseSnapshot(owner);
+            dirtyChunks.computeIfAbsent(owner, k -> new HashSet<>()).add(Chunk.getChunkKey(x >> 4, z >> 4));
+        }
+    }
+
+    private void markDirty(UUID owner, Collection<Long> chunkKeys) {
+        dirtyChunks.computeIfAbsent(owner, k -> new HashSet<>()).addAll(chunkKeys);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) { ensureBaseSnapshot(event.getPlayer().getUniqueId()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockIgnite(BlockIgniteEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockSpread(BlockSpreadEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockGrow(BlockGrowEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFertilize(BlockFertilizeEvent event) {
+        markDirty(event.getBlock());
+        for (BlockState state : event.getBlocks()) {
+            markDirty(state.getWorld(), state.getX(), state.getZ());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent event) { markDirty(event.getToBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerBucketEmpty(PlayerBucketEmptyEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerBucketFill(PlayerBucketFillEvent event) { markDirty(event.getBlock()); }
+
+    // Falling blocks, endermen, trampled farmland, withers...
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onLeavesDecay(LeavesDecayEvent event) { markDirty(event.getBlock()); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonExtend(BlockPistonExtendEvent event) {
+        markDirty(event.getBlock());
+        event.getBlocks().forEach(block -> markDirty(block.getRelative(event.getDirection())));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPistonRetract(BlockPistonRetractEvent event) {
+        markDirty(event.getBlock());
+        event.getBlocks().forEach(this::markDirty);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        markDirty(event.getBlock());
+        event.blockList().forEach(this::markDirty);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) { event.blockList().forEach(this::markDirty); }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStructureGrow(StructureGrowEvent event) {
+        for (BlockState state : event.getBlocks()) {
+            markDirty(state.getWorld(), state.getX(), state.getZ());
+        }
+    }
+
+    // Snapshots ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Save the dirty chunks of every changed island.
+     * Chunks are copied on the main thread, then compressed & written on a background thread.
+     */
+    public void snapshotDirtyIslands() {
+        String fileName = System.currentTimeMillis() + SNAPSHOT_EXTENSION;
+        int chunks = 0;
+        for (Map.Entry<UUID, Set<Long>> entry : dirtyChunks.entrySet()) {
+            UUID owner = entry.getKey();
+            Location islandLocation = islandManager.getIslandLocation(owner);
+            if (islandLocation == null || islandLocation.getWorld() == null) {
+                continue;
+            }
+            World world = islandLocation.getWorld();
+            writeDirtyChunksAsync(owner, world, entry.getValue(), captureChunks(owner, world, entry.getValue(), true), fileName);
+            chunks += entry.getValue().size();
+        }
+        if (!dirtyChunks.isEmpty()) {
+            plugin.getLogger().info("§e[DEBUG] Saving " + chunks + " chunks of " + dirtyChunks.size() + " islands");
+        }
+        dirtyChunks.clear();
+    }
+
+    /**
+     * Save every dirty or being saved chunk synchronously.
+     * Used when the plugin is disabled, as async tasks & chunk loads can't complete anymore.
+     */
+    public void saveAllNow() {
+        for (PendingSnapshot pending : pendingSnapshots) {
+            markDirty(pending.owner, pending.chunkKeys);
+        }
+        pendingSnapshots.clear();
+
+        String fileName = System.currentTimeMillis() + SNAPSHOT_EXTENSION;
+        for (Map.Entry<UUID, Set<Long>> entry : dirtyChunks.entrySet()) {
+            Location islandLocation = islandManager.getIslandLocation(entry.getKey());
+            if (islandLocation == null || islandLocation.getWorld() == null) {
+                continue;
+            }
+            World world = islandLocation.getWorld();
+            writeSnapshot(entry.getKey(), fileName, world.getMinHeight(), world.getMaxHeight(), captureChunksNow(world, entry.getValue()));
+        }
+        dirtyChunks.clear();
+    }
+
+    /**
+     * Write captured dirty chunks on a background thread.
+     * Chunks are marked dirty again if they can't be saved.
+     */
+    private void writeDirtyChunksAsync(UUID owner, World world, Set<Long> chunkKeys, CompletableFuture<List<CapturedChunk>> captured,
+            String fileName) {
+        PendingSnapshot pending = new PendingSnapshot(owner, chunkKeys);
+        pendingSnapshots.add(pending);
+        captured.thenAccept(chunks -> plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            boolean saved = chunks.isEmpty() || writeSnapshot(owner, fileName, world.getMinHeight(), world.getMaxHeight(), chunks);
+            // If it is not pending anymore, it has already been saved by saveAllNow()
+            if (pendingSnapshots.remove(pending) && !saved) {
+                plugin.getServer().getScheduler().runTask(plugin, () -> markDirty(owner, chunkKeys));
+            }
+        }));
+    }
+
+    /**
+     * Save every island chunk in the base snapshot of owner if it doesn't exist yet.
+     */
+    private void ensureBaseSnapshot(UUID owner) {
+        if (!ownersWithBase.add(owner) || new File(new File(backupFolder, owner.toString()), BASE_FILE).exists()) {
+            return;
+        }
+        Location islandLocation = islandManager.getIslandLocation(owner);
+        if (islandLocation == null || islandLocation.getWorld() == null) {
+            // Island is not generated yet, try again on next change
+            ownersWithBase.remove(owner);
+            return;
+        }
+        World world = islandLocation.getWorld();
+        captureChunks(owner, world, getIslandChunks(islandLocation), false).thenAccept(chunks -> plugin.getServer().getScheduler()
+                .runTaskAsynchronously(plugin, () -> {
+                    if (!writeSnapshot(owner, BASE_FILE, world.getMinHeight(), world.getMaxHeight(), chunks)) {
+                        plugin.getServer().getScheduler().runTask(plugin, () -> ownersWithBase.remove(owner));
+                    }
+                }));
+    }
+
+    private Set<Long> getIslandChunks(Location islandLocation) {
+        Set<Long> islandChunks = new HashSet<>();
+        islandManager.forEachIslandChunk(islandLocation, plugin.getConfigSettings().getBackupIslandRadius(),
+                (chunkX, chunkZ) -> islandChunks.add(Chunk.getChunkKey(chunkX, chunkZ)));
+        return islandChunks;
+    }
+
+    /**
+     * Copy chunks, loading them asynchronously if needed.
+     * Chunks that have never been generated are not generated, they are saved as absent.
+     * Chunks that fail to load are skipped, and marked dirty again if retry is true.
+     */
+    private CompletableFuture<List<CapturedChunk>> captureChunks(UUID owner, World world, Set<Long> chunkKeys, boolean retry) {
+        List<CompletableFuture<CapturedChunk>> futures = new ArrayList<>();
+        for (long chunkKey : chunkKeys) {
+            int chunkX = (int) chunkKey;
+            int chunkZ = (int) (chunkKey >> 32);
+            futures.add(world.getChunkAtAsync(chunkX, chunkZ, false)
+                    .thenApply(chunk -> new CapturedChunk(chunkX, chunkZ, chunk == null ? null : chunk.getChunkSnapshot(false, false, false)))
+                    .exceptionally(e -> {
+                        plugin.getLogger().warning("§c[ERROR] Failed to load chunk for island backup of " + owner + ": " + e.getMessage());
+                        if (retry) {
+                            plugin.getServer().getScheduler().runTask(plugin, () -> markDirty(owner, List.of(chunkKey)));
+                        }
+                        return null;
+                    }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList());
+    }
+
+    /**
+     * Copy chunks now, loading them synchronously if needed.
+     */
+    private List<CapturedChunk> captureChunksNow(World world, Set<Long> chunkKeys) {
+        List<CapturedChunk> chunks = new ArrayList<>();
+        for (long chunkKey : chunkKeys) {
+            int chunkX = (int) chunkKey;
+            int chunkZ = (int) (chunkKey >> 32);
+            chunks.add(new CapturedChunk(chunkX, chunkZ, world.isChunkGenerated(chunkX, chunkZ)
+                    ? world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false) : null));
+        }
+        return chunks;
+    }
+
+    /**
+     * Encode & write chunks to a new snapshot file.
+     *
+     * @return true if the file has been saved
+     */
+    private boolean writeSnapshot(UUID owner, String fileName, int minY, int maxY, List<CapturedChunk> chunks) {
+        List<SavedChunk> savedChunks = chunks.stream().map(chunk -> encodeChunk(chunk, minY, maxY)).toList();
+        return writeSnapshotFile(new File(backupFolder, owner.toString()), fileName, savedChunks);
+    }
+
+    /**
+     * Format: version, chunk count, then for each chunk: x, z, min y, max y, block data palette & run-length encoded
+     * palette indexes in y, z, x order. Chunks that were not generated have an empty palette & no runs.
+     */
+    private boolean writeSnapshotFile(File islandFolder, String fileName, Collection<SavedChunk> savedChunks) {
+        File file = new File(islandFolder, fileName);
+        File tmpFile = new File(islandFolder, fileName + ".tmp");
+        synchronized (fileLock) {
+            try {
+                Files.createDirectories(islandFolder.toPath());
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeInt(savedChunks.size());
+                    for (SavedChunk savedChunk : savedChunks) {
+                        writeChunk(out, savedChunk);
+                    }
+                }
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                plugin.getLogger().fine(() -> "Saved " + savedChunks.size() + " chunks in " + file);
+                return true;
+            } catch (IOException e) {
+                plugin.getLogger().warning("§c[ERROR] Failed to save island backup " + file + ": " + e.getMessage());
+                tmpFile.delete();
+                return false;
+            }
+        }
+    }
+
+    private SavedChunk encodeChunk(CapturedChunk chunk, int minY, int maxY) {
+        if (chunk.snapshot() == null) {
+            return new SavedChunk(chunk.chunkX(), chunk.chunkZ(), minY, maxY, new String[0], List.of());
+        }
+        Map<BlockData, Integer> palette = new LinkedHashMap<>();
+        List<int[]> runs = new ArrayList<>();
+        int runIndex = -1;
+        int runLength = 0;
+        for (int y = minY; y < maxY; y++) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    int index = palette.computeIfAbsent(chunk.snapshot().getBlockData(x, y, z), k -> palette.size());
+                    if (index != runIndex) {
+                        if (runLength > 0) {
+                            runs.add(new int[] {runIndex, runLength});
+                        }
+                        runIndex = index;
+                        runLength = 0;
+                    }
+                    runLength++;
+                }
+            }
+        }
+        runs.add(new int[] {runIndex, runLength});
+        return new SavedChunk(chunk.chunkX(), chunk.chunkZ(), minY, maxY,
+                palette.keySet().stream().map(BlockData::getAsString).toArray(String[]::new), runs);
+    }
+
+    private void writeChunk(DataOutputStream out, SavedChunk savedChunk) throws IOException {
+        out.writeInt(savedChunk.chunkX());
+        out.writeInt(savedChunk.chunkZ());
+        out.writeInt(savedChunk.minY());
+        out.writeInt(savedChunk.maxY());
+        out.writeInt(savedChunk.palette().length);
+        for (String blockData : savedChunk.palette()) {
+            out.writeUTF(blockData);
+        }
+        for (int[] run : savedChunk.runs()) {
+            out.writeInt(run[0]);
+            out.writeInt(run[1]);
+        }
+    }
+
+    /**
+     * Merge snapshots older than backups.maxAgeDays into the base snapshot of each island & delete them.
+     * Disk usage & rollback cost then depend on recent changes, not on the island age.
+     */
+    private void compactSnapshots() {
+        long maxTime = System.currentTimeMillis() - plugin.getConfigSettings().getBackupMaxAgeDays() * 86_400_000L;
+        File[] islandFolders = backupFolder.listFiles(File::isDirectory);
+        if (islandFolders == null) {
+            return;
+        }
+        for (File islandFolder : islandFolders) {
+            synchronized (fileLock) {
+                List<Long> oldTimes = listSnapshotTimes(islandFolder, maxTime);
+                if (oldTimes.isEmpty()) {
+                    continue;
+                }
+                try {
+                    Map<Long, SavedChunk> merged = new HashMap<>();
+                    for (long fileTime : oldTimes) {
+                        readSnapshotFile(new File(islandFolder, fileTime + SNAPSHOT_EXTENSION), null, merged);
+                    }
+                    File baseFile = new File(islandFolder, BASE_FILE);
+                    if (baseFile.exists()) {
+                        readSnapshotFile(baseFile, null, merged);
+                    }
+                    if (writeSnapshotFile(islandFolder, BASE_FILE, merged.values())) {
+                        for (long fileTime : oldTimes) {
+                            Files.delete(new File(islandFolder, fileTime + SNAPSHOT_EXTENSION).toPath());
+                        }
+                        plugin.getLogger().fine(() -> "Merged " + oldTimes.size() + " old snapshots of " + islandFolder.getName());
+                    }
+                } catch (IOException e) {
+                    plugin.getLogger().warning("§c[ERROR] Failed to merge old island backups of " + islandFolder.getName() + ": "
+                            + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Times of the snapshots of an island saved at or before maxTime, newest first.
+     */
+    private List<Long> listSnapshotTimes(File islandFolder, long maxTime) {
+        File[] files = islandFolder.listFiles((dir, name) -> name.endsWith(SNAPSHOT_EXTENSION) && !name.equals(BASE_FILE));
+        List<Long> times = new ArrayList<>();
+        if (files == null) {
+            return times;
+        }
+        for (File file : files) {
+            try {
+                long fileTime = Long.parseLong(file.getName().substring(0, file.getName().length() - SNAPSHOT_EXTENSION.length()));
+                if (fileTime <= maxTime) {
+                    times.add(fileTime);
+                }
+            } catch (NumberFormatException e) {
+                plugin.getLogger().warning("Ignoring unknown backup file: " + file);
+            }
+        }
+        times.sort(Comparator.reverseOrder());
+        return times;
+    }
+
+    // Restore -----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Restore the island of player as it was at time.
+     * Snapshots are read on a background thread, then blocks are restored on the main thread, with at most
+     * restoreBlocksPerTick checked blocks by tick.
+     */
+    public void rollback(Player player, long time) {
+        UUID owner = player.getUniqueId();
+        Location islandLocation = islandManager.getIslandLocation(owner);
+        if (islandLocation == null || islandLocation.getWorld() == null) {
+            player.sendMessage("§cYou don't have an island.");
+            return;
+        }
+        if (!restoringIslands.add(owner)) {
+            player.sendMessage("§cYour island is already being restored.");
+            return;
+        }
+        // Save pending changes before they are overwritten, so that the rollback can be undone
+        World world = islandLocation.getWorld();
+        Set<Long> pendingChunks = dirtyChunks.remove(owner);
+        if (pendingChunks != null) {
+            writeDirtyChunksAsync(owner, world, pendingChunks, CompletableFuture.completedFuture(captureChunksNow(world, pendingChunks)),
+                    System.currentTimeMillis() + SNAPSHOT_EXTENSION);
+        }
+
+        Set<Long> islandChunks = getIslandChunks(islandLocation);
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<RestoreChunk> chunksToRestore;
+            try {
+                chunksToRestore = readSnapshots(owner, time, islandChunks);
+            } catch (IOException e) {
+                plugin.getLogger().warning("§c[ERROR] Failed to read island backup of " + owner + ": " + e.getMessage());
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    restoringIslands.remove(owner);
+                    player.sendMessage("§cYour island backup can't be read, ask an admin to check the server logs.");
+                });
+                return;
+            }
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (chunksToRestore.isEmpty()) {
+                    restoringIslands.remove(owner);
+                    player.sendMessage("§cNo backup found for your island at this time.");
+                    return;
+                }
+                player.sendMessage("§eRestoring " + chunksToRestore.size() + " chunks of your island...");
+                player.sendMessage("§eOnly blocks are restored: chest contents, signs text & entities are not.");
+                new RestoreTask(owner, world, chunksToRestore).runTaskTimer(plugin, 1L, 1L);
+            });
+        });
+    }
+
+    /**
+     * Read the latest saved version before time of every island chunk & parse its blocks.
+     * Chunks without any saved version before time have not changed since the base snapshot.
+     */
+    private List<RestoreChunk> readSnapshots(UUID owner, long time, Set<Long> islandChunks) throws IOException {
+        File islandFolder = new File(backupFolder, owner.toString());
+        Map<Long, SavedChunk> savedChunks = new HashMap<>();
+        synchronized (fileLock) {
+            for (long fileTime : listSnapshotTimes(islandFolder, time)) {
+                if (savedChunks.size() == islandChunks.size()) {
+                    break;
+                }
+                readSnapshotFile(new File(islandFolder, fileTime + SNAPSHOT_EXTENSION), islandChunks, savedChunks);
+            }
+            File baseFile = new File(islandFolder, BASE_FILE);
+            if (savedChunks.size() < islandChunks.size() && baseFile.exists()) {
+                readSnapshotFile(baseFile, islandChunks, savedChunks);
+            }
+        }
+
+        BlockData air = plugin.getServer().createBlockData(Material.AIR);
+        List<RestoreChunk> chunksToRestore = new ArrayList<>();
+        for (SavedChunk savedChunk : savedChunks.values()) {
+            if (savedChunk.palette().length == 0) {
+                // Chunk was not generated, it was only void
+                chunksToRestore.add(new RestoreChunk(savedChunk.chunkX(), savedChunk.chunkZ(), savedChunk.minY(), new BlockData[] {air},
+                        List.<int[]>of(new int[] {0, 16 * 16 * (savedChunk.maxY() - savedChunk.minY())}), true));
+                continue;
+            }
+            BlockData[] palette = new BlockData[savedChunk.palette().length];
+            for (int i = 0; i < palette.length; i++) {
+                try {
+                    palette[i] = plugin.getServer().createBlockData(savedChunk.palette()[i]);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Unknown block " + savedChunk.palette()[i] + " in chunk " + savedChunk.chunkX() + ", "
+                            + savedChunk.chunkZ(), e);
+                }
+            }
+            chunksToRestore.add(new RestoreChunk(savedChunk.chunkX(), savedChunk.chunkZ(), savedChunk.minY(), palette, savedChunk.runs(), false));
+        }
+        return chunksToRestore;
+    }
+
+    /**
+     * Add the chunks of file that are not in savedChunks yet.
+     *
+     * @param islandChunks chunks to read, or null to read all
+     */
+    private void readSnapshotFile(File file, Set<Long> islandChunks, Map<Long, SavedChunk> savedChunks) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported backup format " + version + " in " + file);
+            }
+            int chunkCount = in.readInt();
+            for (int i = 0; i < chunkCount; i++) {
+                SavedChunk savedChunk = readChunk(in);
+                long chunkKey = Chunk.getChunkKey(savedChunk.chunkX(), savedChunk.chunkZ());
+                if (islandChunks == null || islandChunks.contains(chunkKey)) {
+                    savedChunks.putIfAbsent(chunkKey, savedChunk);
+                }
+            }
+        }
+    }
+
+    private SavedChunk readChunk(DataInputStream in) throws IOException {
+        int chunkX = in.readInt();
+        int chunkZ = in.readInt();
+        int minY = in.readInt();
+        int maxY = in.readInt();
+        String[] palette = new String[in.readInt()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = in.readUTF();
+        }
+        List<int[]> runs = new ArrayList<>();
+        if (palette.length > 0) {
+            int blockCount = 16 * 16 * (maxY - minY);
+            for (int read = 0; read < blockCount;) {
+                int[] run = {in.readInt(), in.readInt()};
+                if (run[0] < 0 || run[0] >= palette.length || run[1] <= 0) {
+                    throw new IOException("Corrupted chunk " + chunkX + ", " + chunkZ);
+                }
+                runs.add(run);
+                read += run[1];
+            }
+        }
+        return new SavedChunk(chunkX, chunkZ, minY, maxY, palette, runs);
+    }
+
+    /**
+     * Parse a time as 30s, 10m, 2h or 1d. Without unit, minutes are used.
+     *
+     * @return the time in milliseconds or -1 if it can't be parsed
+     */
+    public static long parseDuration(String text) {
+        if (text == null || text.isEmpty()) {
+            return -1;
+        }
+        char unit = Character.toLowerCase(text.charAt(text.length() - 1));
+        long multiplier = switch (unit) {
+            case 's' -> 1000L;
+            case 'm' -> 60_000L;
+            case 'h' -> 3_600_000L;
+            case 'd' -> 86_400_000L;
+            default -> 0L;
+        };
+        String number = multiplier == 0L ? text : text.substring(0, text.length() - 1);
+        try {
+            long value = Long.parseLong(number);
+            return value < 0 ? -1 : value * (multiplier == 0L ? 60_000L : multiplier);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // snapshot is null if the chunk was not generated
+    private record CapturedChunk(int chunkX, int chunkZ, ChunkSnapshot snapshot) {}
+
+    private record SavedChunk(int chunkX, int chunkZ, int minY, int maxY, String[] palette, List<int[]> runs) {}
+
+    // absent if the chunk was not generated when it was saved
+    private record RestoreChunk(int chunkX, int chunkZ, int minY, BlockData[] palette, List<int[]> runs, boolean absent) {}
+
+    private static final class PendingSnapshot {
+        private final UUID owner;
+        private final Set<Long> chunkKeys;
+
+        private PendingSnapshot(UUID owner, Set<Long> chunkKeys) {
+            this.owner = owner;
+            this.chunkKeys = chunkKeys;
+        }
+    }
+
+    /**
+     * Restore saved chunks block by block, within the per tick budget.
+     */
+    private class RestoreTask extends BukkitRunnable {
+        private final UUID owner;
+        private final World world;
+        private final List<RestoreChunk> chunks;
+        // Chunks being loaded by this task
+        private final Set<Long> loadingChunks;
+        private boolean finished;
+        private int waitingTicks;
+        private int chunkIndex;
+        private int runIndex;
+        private int runOffset;
+        private int blockIndex;
+
+        private RestoreTask(UUID owner, World world, List<RestoreChunk> chunks) {
+            this.owner = owner;
+            this.world = world;
+            this.chunks = chunks;
+            this.loadingChunks = new HashSet<>();
+            chunks.forEach(this::loadChunk);
+        }
+
+        /**
+         * Load the chunk asynchronously & keep it loaded with a plugin ticket until the restore is done.
+         * Chunks that were not generated in the backup are not generated.
+         */
+        private void loadChunk(RestoreChunk chunk) {
+            long chunkKey = Chunk.getChunkKey(chunk.chunkX(), chunk.chunkZ());
+            if (!loadingChunks.add(chunkKey)) {
+                return;
+            }
+            world.getChunkAtAsync(chunk.chunkX(), chunk.chunkZ(), !chunk.absent()).whenComplete((loaded, e) -> {
+                loadingChunks.remove(chunkKey);
+                if (loaded != null && !finished) {
+                    loaded.addPluginChunkTicket(plugin);
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            int budget = plugin.getConfigSettings().getRestoreBlocksPerTick();
+            while (budget > 0 && chunkIndex < chunks.size()) {
+                RestoreChunk chunk = chunks.get(chunkIndex);
+                // Still not generated, there is nothing to remove
+                if (chunk.absent() && !world.isChunkGenerated(chunk.chunkX(), chunk.chunkZ())) {
+                    nextChunk();
+                    continue;
+                }
+                // Don't load chunks synchronously, wait for the async load
+                // Ticket may have been removed by the owner quit, so ask again for the chunk
+                if (!world.isChunkLoaded(chunk.chunkX(), chunk.chunkZ())) {
+                    loadChunk(chunk);
+                    if (++waitingTicks > RESTORE_LOAD_TIMEOUT_TICKS) {
+                        plugin.getLogger().warning("§c[ERROR] Chunk " + chunk.chunkX() + ", " + chunk.chunkZ()
+                                + " can't be loaded, island restore of " + owner + " stopped.");
+                        finish();
+                    }
+                    return;
+                }
+                waitingTicks = 0;
+
+                int[] run = chunk.runs().get(runIndex);
+                BlockData blockData = chunk.palette()[run[0]];
+                while (budget > 0 && runOffset < run[1]) {
+                    int x = (chunk.chunkX() << 4) + (blockIndex & 15);
+                    int z = (chunk.chunkZ() << 4) + ((blockIndex >> 4) & 15);
+                    int y = chunk.minY() + (blockIndex >> 8);
+                    Block block = world.getBlockAt(x, y, z);
+                    if (!block.getBlockData().equals(blockData)) {
+                        block.setBlockData(blockData, false);
+                    }
+                    runOffset++;
+                    blockIndex++;
+                    budget--;
+                }
+
+                if (runOffset == run[1]) {
+                    runOffset = 0;
+                    runIndex++;
+                    if (runIndex == chunk.runs().size()) {
+                        nextChunk();
+                    }
+                }
+            }
+
+            if (chunkIndex == chunks.size()) {
+                finish();
+            }
+        }
+
+        private void nextChunk() {
+            runIndex = 0;
+            runOffset = 0;
+            blockIndex = 0;
+            chunkIndex++;
+        }
+
+        private void finish() {
+            cancel();
+            finished = true;
+            boolean done = chunkIndex == chunks.size();
+            for (int i = 0; i < chunks.size(); i++) {
+                RestoreChunk chunk = chunks.get(i);
+                // Restored chunks are the new reference for next snapshot
+                if (i <= chunkIndex) {
+                    markDirty(owner, List.of(Chunk.getChunkKey(chunk.chunkX(), chunk.chunkZ())));
+                }
+                // Plugin tickets are shared, keep the ones of the island of an online owner
+                if (!islandManager.isIslandChunkHeld(owner, chunk.chunkX(), chunk.chunkZ())) {
+                    world.removePluginChunkTicket(chunk.chunkX(), chunk.chunkZ(), plugin);
+                }
+            }
+            restoringIslands.remove(owner);
+            Player player = plugin.getServer().getPlayer(owner);
+            if (player != null) {
+                player.sendMessage(done ? "§aYour island has been restored!" : "§cYour island restore failed, try again later.");
+            }
+            plugin.getLogger().info("§e[DEBUG] Restored " + chunkIndex + "/" + chunks.size() + " chunks of island of " + owner);
+        }
+    }
+}
@@ -12,21 +12,47 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class IslandManager {
     private final VoidWorldGeneratorPlugin plugin;
     private final Map<UUID, Location> playerIslands;
     private final Set<String> usedPositions;
+    // Token of the latest login of each player, so that an older login can't release the chunks of a newer one
+    private final Map<UUID, Long> loginTokens;
+    // Token of the login of each online player
+    private final Map<UUID, Long> joinedTokens;
+    private final AtomicLong loginCounter;
+    // Islands owners by region coordinates, to find the island at a location without looping over every island
+    private final Map<Long, List<UUID>> islandsByRegion;
     private final Random random;
     private static final int MAX_RANGE = 100000;
-    private static final int MIN_DISTANCE = 200;
+    static final int MIN_DISTANCE = 200;
+    // Island blocks span 6 blocks from the corner, the tree can spread its leaves a few blocks further
+    private static final int ISLAND_MARGIN = 3;
+    static final int ISLAND_SIZE = 6;
+    // Release prefetched chunks if the player never finishes joining (login denied, disconnect...)
+    private static final long PREFETCH_TIMEOUT_TICKS = 20L * 30;
+    static final int REGION_SIZE = 512;
+    // Offset of the island corner in its cell, so that the island and its margin fit in a single chunk
+    private static final int ISLAND_CELL_OFFSET = 5;
+    // Next slot to try for the "region" layout with cohort grouping, slots before it are all used
+    private int nextRegionSlot;
 
     public IslandManager(VoidWorldGeneratorPlugin plugin) {
         this.plugin = plugin;
-        this.playerIslands = new HashMap<>();
+        // Read from the async pre-login thread, so it must be thread safe
+        this.playerIslands = new ConcurrentHashMap<>();
+        this.loginTokens = new ConcurrentHashMap<>();
+        this.joinedTokens = new HashMap<>();
+        this.loginCounter = new AtomicLong();
+        this.islandsByRegion = new HashMap<>();
         this.usedPositions = new HashSet<>();
         this.random = new Random();
         loadPlayerIslands();
+        // Once worlds are loaded
+        plugin.getServer().getScheduler().runTask(plugin, this::clearForceLoadedIslandChunks);
     }
 
     public void generateIslandForPlayer(Player player) {
@@ -38,7 +64,8 @@ public class IslandManager {
             return;
         }
 
-        Location islandLocation = calculateRandomIslandLocation(world);
+        Location islandLocation = plugin.getConfigSettings().isRegionIslandLayout() ? calculateRegionIslandLocation(world)
+                : calculateRandomIslandLocation(world);
 
         new BukkitRunnable() {
             @Override
@@ -53,7 +80,7 @@ public class IslandManager {
                 new BukkitRunnable() {
                     @Override
                     public void run() {
-                        playerIslands.put(player.getUniqueId(), islandLocation);
+                        registerIsland(player.getUniqueId(), islandLocation);
                         savePlayerIslands();
 
                         Location spawnLocation = islandLocation.clone().add(1, 7, 4);
@@ -101,13 +128,138 @@ public class IslandManager {
             location = new Location(world, x, 64, z);
             positionKey = x + "," + z;
             attempts++;
-        } while (usedPositions.contains(positionKey) && attempts < 100);
+        } while ((usedPositions.contains(positionKey) || isTooCloseToIslandOrSpawn(world, x, z)) && attempts < 100);
 
         usedPositions.add(positionKey);
         plugin.getLogger().info("§e[DEBUG] Generated island at: " + location);
         return location;
     }
 
+    /**
+     * Find an island location aligned on the region file grid.
+     * Each region file is split in islandsPerRegionAxis² chunk-aligned cells with one island each.
+     * With cohort grouping, regions are filled one after the other in a spiral around (0, 0), so islands created at
+     * the same time share the same region files. Slots too close to the spawn or to another island are skipped.
+     */
+    private Location calculateRegionIslandLocation(World world) {
+        int islandsPerRegionAxis = plugin.getConfigSettings().getIslandsPerRegionAxis();
+        int islandsPerRegion = islandsPerRegionAxis * islandsPerRegionAxis;
+        int cellSize = REGION_SIZE / islandsPerRegionAxis;
+        int maxRegion = MAX_RANGE / REGION_SIZE;
+        boolean cohortGrouping = plugin.getConfigSettings().isIslandCohortGrouping();
+        String positionKey;
+        int x, z;
+        int attempts = 0;
+
+        do {
+            int regionX, regionZ, slot;
+            if (cohortGrouping) {
+                int[] region = spiralRegion(nextRegionSlot / islandsPerRegion);
+                regionX = region[0];
+                regionZ = region[1];
+                slot = nextRegionSlot % islandsPerRegion;
+                nextRegionSlot++;
+            } else {
+                regionX = random.nextInt(maxRegion * 2) - maxRegion;
+                regionZ = random.nextInt(maxRegion * 2) - maxRegion;
+                slot = random.nextInt(islandsPerRegion);
+                attempts++;
+            }
+            x = regionX * REGION_SIZE + (slot % islandsPerRegionAxis) * cellSize + ISLAND_CELL_OFFSET;
+            z = regionZ * REGION_SIZE + (slot / islandsPerRegionAxis) * cellSize + ISLAND_CELL_OFFSET;
+            positionKey = x + "," + z;
+        } while ((usedPositions.contains(positionKey) || isTooCloseToIslandOrSpawn(world, x, z)) && attempts < 100);
+
+        usedPositions.add(positionKey);
+        Location location = new Location(world, x, 64, z);
+        plugin.getLogger().info("§e[DEBUG] Generated region aligned island at: " + location);
+        return location;
+    }
+
+    /**
+     * Whether an island at (x, z) would be less than MIN_DISTANCE away from the world spawn or from an existing island.
+     * Islands of both layouts can be mixed in the same world, so being in a free slot is not enough.
+     */
+    private boolean isTooCloseToIslandOrSpawn(World world, int x, int z) {
+        ConfigSettings configSettings = plugin.getConfigSettings();
+        if (Math.max(Math.abs(x - configSettings.getSpawnX(world.getName())),
+                Math.abs(z - configSettings.getSpawnZ(world.getName()))) < MIN_DISTANCE) {
+            return true;
+        }
+        // MIN_DISTANCE is lower than a region size, so only neighbour regions can contain a too close island
+        int regionX = x >> 9;
+        int regionZ = z >> 9;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                List<UUID> owners = islandsByRegion.get(regionKey(regionX + dx, regionZ + dz));
+                if (owners == null) {
+                    continue;
+                }
+                for (UUID owner : owners) {
+                    Location islandLocation = playerIslands.get(owner);
+                    if (world.equals(islandLocation.getWorld()) && Math.max(Math.abs(x - islandLocation.getBlockX()),
+                            Math.abs(z - islandLocation.getBlockZ())) < MIN_DISTANCE) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Region coordinates of the index-th region of a square spiral around (0, 0).
+     */
+    private static int[] spiralRegion(int index) {
+        if (index == 0) {
+            return new int[] {0, 0};
+        }
+        // Ring n is the square border at distance n of (0, 0), it has 8n regions
+        int ring = 1;
+        int ringStart = 1;
+        while (index >= ringStart + 8 * ring) {
+            ringStart += 8 * ring;
+            ring++;
+        }
+        int side = 2 * ring;
+        int pos = index - ringStart;
+        if (pos < side) {
+            return new int[] {-ring + pos, -ring};
+        }
+        pos -= side;
+        if (pos < side) {
+            return new int[] {ring, -ring + pos};
+        }
+        pos -= side;
+        if (pos < side) {
+            return new int[] {ring - pos, ring};
+        }
+        pos -= side;
+        return new int[] {-ring, ring - pos};
+    }
+
+    /**
+     * Index of a region in the square spiral around (0, 0), reverse of {@link #spiralRegion(int)}.
+     */
+    private static int spiralIndex(int regionX, int regionZ) {
+        int ring = Math.max(Math.abs(regionX), Math.abs(regionZ));
+        if (ring == 0) {
+            return 0;
+        }
+        int ringStart = 1 + 4 * ring * (ring - 1);
+        int side = 2 * ring;
+        if (regionZ == -ring && regionX < ring) {
+            return ringStart + regionX + ring;
+        }
+        if (regionX == ring && regionZ < ring) {
+            return ringStart + side + regionZ + ring;
+        }
+        if (regionZ == ring && regionX > -ring) {
+            return ringStart + 2 * side + ring - regionX;
+        }
+        return ringStart + 3 * side + ring - regionZ;
+    }
+
     private void generateIsland(Location center) {
         World world = center.getWorld();
         if (world == null) {
@@ -150,7 +302,7 @@ public class IslandManager {
             if (!location.getChunk().isLoaded()) {
                 location.getChunk().load(true);
             }
-            location.getChunk().setForceLoaded(true);
+            location.getChunk().addPluginChunkTicket(plugin);
 
             // Check if chest already exists and is populated
             if (location.getBlock().getType() == Material.CHEST && isChestAlreadyPopulated(location)) {
@@ -182,7 +334,7 @@ public class IslandManager {
         if (!location.getChunk().isLoaded()) {
             plugin.getLogger().info("§e[DEBUG] Chunk unloaded, reloading...");
             location.getChunk().load(true);
-            location.getChunk().setForceLoaded(true);
+            location.getChunk().addPluginChunkTicket(plugin);
             plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
                 populateChestCorrectly(location, attempt + 1);
             }, 40L);
@@ -403,6 +555,179 @@ public class IslandManager {
         return grassBlock.getType() == Material.GRASS_BLOCK;
     }
 
+    /**
+     * Start loading the island chunks of a player that is about to join.
+     * Safe to call from the async pre-login thread. Chunks are loaded asynchronously and kept in memory with a plugin
+     * chunk ticket until the player quits or fails to join in time.
+     */
+    public void prefetchIslandChunks(UUID uuid) {
+        Long token = loginCounter.incrementAndGet();
+        loginTokens.put(uuid, token);
+        Location islandLocation = playerIslands.get(uuid);
+        if (islandLocation == null || islandLocation.getWorld() == null) {
+            return;
+        }
+
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            World world = islandLocation.getWorld();
+            forEachIslandChunk(islandLocation, (chunkX, chunkZ) -> world.getChunkAtAsync(chunkX, chunkZ).thenAccept(chunk -> {
+                // Login may have ended while the chunk was loading
+                if (token.equals(loginTokens.get(uuid))) {
+                    chunk.addPluginChunkTicket(plugin);
+                }
+            }));
+            plugin.getLogger().info("§e[DEBUG] Prefetching island chunks for " + uuid);
+        });
+
+        plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
+            if (plugin.getServer().getPlayer(uuid) == null && loginTokens.remove(uuid, token)) {
+                removeIslandChunkTickets(uuid);
+            }
+        }, PREFETCH_TIMEOUT_TICKS);
+    }
+
+    /**
+     * Remember the login of a player that joined, so that its quit only releases chunks of this login.
+     */
+    public void onPlayerJoin(UUID uuid) {
+        Long token = loginTokens.get(uuid);
+        if (token != null) {
+            joinedTokens.put(uuid, token);
+        }
+    }
+
+    /**
+     * Drop the plugin chunk tickets of the island of a player that quits so that its chunks can unload.
+     * Nothing is released if a newer login of the same player is in progress (duplicate login, fast reconnection).
+     * Must be called from the main thread.
+     */
+    public void releaseIslandChunks(UUID uuid) {
+        Long joinedToken = joinedTokens.remove(uuid);
+        if (!Objects.equals(joinedToken, loginTokens.get(uuid))) {
+            return;
+        }
+        loginTokens.remove(uuid);
+        removeIslandChunkTickets(uuid);
+    }
+
+    /**
+     * Whether the chunk is kept loaded for the island of an online or joining owner.
+     */
+    boolean isIslandChunkHeld(UUID uuid, int chunkX, int chunkZ) {
+        Location islandLocation = playerIslands.get(uuid);
+        if (islandLocation == null || !loginTokens.containsKey(uuid)) {
+            return false;
+        }
+        return chunkX >= (islandLocation.getBlockX() - ISLAND_MARGIN) >> 4
+                && chunkX <= (islandLocation.getBlockX() + ISLAND_SIZE + ISLAND_MARGIN) >> 4
+                && chunkZ >= (islandLocation.getBlockZ() - ISLAND_MARGIN) >> 4
+                && chunkZ <= (islandLocation.getBlockZ() + ISLAND_SIZE + ISLAND_MARGIN) >> 4;
+    }
+
+    private void removeIslandChunkTickets(UUID uuid) {
+        Location islandLocation = playerIslands.get(uuid);
+        if (islandLocation == null || islandLocation.getWorld() == null) {
+            return;
+        }
+
+        World world = islandLocation.getWorld();
+        forEachIslandChunk(islandLocation, (chunkX, chunkZ) -> {
+            world.removePluginChunkTicket(chunkX, chunkZ, plugin);
+            // Chest chunks used to be force loaded forever
+            if (world.isChunkForceLoaded(chunkX, chunkZ)) {
+                world.setChunkForceLoaded(chunkX, chunkZ, false);
+            }
+        });
+    }
+
+    /**
+     * Older versions force loaded the chest chunk of every island, that flag is saved in the world.
+     * Clear it so that island chunks are only kept loaded for online players.
+     */
+    private void clearForceLoadedIslandChunks() {
+        int[] cleared = {0};
+        for (Location islandLocation : playerIslands.values()) {
+            World world = islandLocation.getWorld();
+            if (world == null) {
+                continue;
+            }
+            forEachIslandChunk(islandLocation, (chunkX, chunkZ) -> {
+                if (world.isChunkForceLoaded(chunkX, chunkZ)) {
+                    world.setChunkForceLoaded(chunkX, chunkZ, false);
+                    cleared[0]++;
+                }
+            });
+        }
+        if (cleared[0] > 0) {
+            plugin.getLogger().info("Cleared force loading of " + cleared[0] + " island chunks.");
+        }
+    }
+
+    private void forEachIslandChunk(Location islandLocation, ChunkConsumer action) {
+        forEachIslandChunk(islandLocation, ISLAND_MARGIN, action);
+    }
+
+    /**
+     * Call action for every chunk that contains a block of the island or a block at most margin blocks away from it.
+     */
+    void forEachIslandChunk(Location islandLocation, int margin, ChunkConsumer action) {
+        int minChunkX = (islandLocation.getBlockX() - margin) >> 4;
+        int maxChunkX = (islandLocation.getBlockX() + ISLAND_SIZE + margin) >> 4;
+        int minChunkZ = (islandLocation.getBlockZ() - margin) >> 4;
+        int maxChunkZ = (islandLocation.getBlockZ() + ISLAND_SIZE + margin) >> 4;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                action.accept(chunkX, chunkZ);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface ChunkConsumer {
+        void accept(int chunkX, int chunkZ);
+    }
+
+    private void registerIsland(UUID uuid, Location islandLocation) {
+        playerIslands.put(uuid, islandLocation);
+        islandsByRegion.computeIfAbsent(regionKey(islandLocation.getBlockX() >> 9, islandLocation.getBlockZ() >> 9),
+                key -> new ArrayList<>()).add(uuid);
+    }
+
+    private static long regionKey(int regionX, int regionZ) { return ((long) regionZ << 32) | (regionX & 0xFFFFFFFFL); }
+
+    /**
+     * Find the owner of the island at most radius blocks away from the given block.
+     * radius must be lower than a region size (512), only the neighbour regions are checked.
+     *
+     * @return the owner UUID or null if there is no island there
+     */
+    public UUID getIslandOwnerAt(World world, int x, int z, int radius) {
+        int regionX = x >> 9;
+        int regionZ = z >> 9;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                List<UUID> owners = islandsByRegion.get(regionKey(regionX + dx, regionZ + dz));
+                if (owners == null) {
+                    continue;
+                }
+                for (UUID owner : owners) {
+                    Location islandLocation = playerIslands.get(owner);
+                    if (world.equals(islandLocation.getWorld())
+                            && x >= islandLocation.getBlockX() - radius && x <= islandLocation.getBlockX() + ISLAND_SIZE + radius
+                            && z >= islandLocation.getBlockZ() - radius && z <= islandLocation.getBlockZ() + ISLAND_SIZE + radius) {
+                        return owner;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    public Location getIslandLocation(UUID uuid) {
+        Location islandLocation = playerIslands.get(uuid);
+        return islandLocation != null ? islandLocation.clone() : null;
+    }
+
     public boolean hasIsland(Player player) {
         return playerIslands.containsKey(player.getUniqueId());
     }
@@ -426,7 +751,7 @@ public class IslandManager {
                     World world = plugin.getServer().getWorld(worldName);
                     if (world != null) {
                         Location loc = new Location(world, x, y, z);
-                        playerIslands.put(uuid, loc);
+                        registerIsland(uuid, loc);
                         usedPositions.add((int)x + "," + (int)z);
                     }
                 } catch (Exception e) {
@@ -435,9 +760,41 @@ public class IslandManager {
             }
         }
 
+        initNextRegionSlot();
         plugin.getLogger().info("§e[DEBUG] Loaded " + playerIslands.size() + " islands");
     }
 
+    /**
+     * Set nextRegionSlot to the first free slot of the "region" layout, so that cohort grouping goes on where it
+     * stopped before the restart.
+     */
+    private void initNextRegionSlot() {
+        if (!plugin.getConfigSettings().isRegionIslandLayout()) {
+            return;
+        }
+        int islandsPerRegionAxis = plugin.getConfigSettings().getIslandsPerRegionAxis();
+        int cellSize = REGION_SIZE / islandsPerRegionAxis;
+        Set<Integer> usedSlots = new HashSet<>();
+        for (Location islandLocation : playerIslands.values()) {
+            int x = islandLocation.getBlockX() - ISLAND_CELL_OFFSET;
+            int z = islandLocation.getBlockZ() - ISLAND_CELL_OFFSET;
+            // Islands created with the "random" layout are not in a slot
+            if (Math.floorMod(x, cellSize) != 0 || Math.floorMod(z, cellSize) != 0) {
+                continue;
+            }
+            int slot = Math.floorMod(z, REGION_SIZE) / cellSize * islandsPerRegionAxis + Math.floorMod(x, REGION_SIZE) / cellSize;
+            long index = (long) spiralIndex(Math.floorDiv(x, REGION_SIZE), Math.floorDiv(z, REGION_SIZE))
+                    * islandsPerRegionAxis * islandsPerRegionAxis + slot;
+            if (index <= Integer.MAX_VALUE) {
+                usedSlots.add((int) index);
+            }
+        }
+        nextRegionSlot = 0;
+        while (usedSlots.contains(nextRegionSlot)) {
+            nextRegionSlot++;
+        }
+    }
+
     private void savePlayerIslands() {
         FileConfiguration config = plugin.getConfig();
         config.set("playerIslands", null);
@@ -7,10 +7,15 @@ import org.bstats.bukkit.Metrics;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.block.Biome;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.generator.BiomeProvider;
 import org.bukkit.generator.BlockPopulator;
@@ -25,6 +30,7 @@ import org.jetbrains.annotations.NotNull;
 public class VoidWorldGeneratorPlugin extends JavaPlugin implements Listener {
     private ConfigSettings configSettings;
     private IslandManager islandManager;
+    private IslandBackupManager islandBackupManager;
 
     @Override
     public void onEnable() {
@@ -36,9 +42,21 @@ public class VoidWorldGeneratorPlugin extends JavaPlugin implements Listener {
         // Register event listener
         getServer().getPluginManager().registerEvents(this, this);
 
+        if (configSettings.isBackupsEnabled()) {
+            islandBackupManager = new IslandBackupManager(this, islandManager);
+            getServer().getPluginManager().registerEvents(islandBackupManager, this);
+        }
+
         getLogger().info("VoidWorldGenerator enabled with island generation!");
     }
 
+    @Override
+    public void onDisable() {
+        if (islandBackupManager != null) {
+            islandBackupManager.saveAllNow();
+        }
+    }
+
     public static VoidWorldGeneratorPlugin getInstance() {
         return getPlugin(VoidWorldGeneratorPlugin.class);
     }
@@ -49,13 +67,57 @@ public class VoidWorldGeneratorPlugin extends JavaPlugin implements Listener {
         return new VoidChunkGenerator(worldName);
     }
 
+    public ConfigSettings getConfigSettings() {
+        return configSettings;
+    }
+
     public IslandManager getIslandManager() {
         return islandManager;
     }
 
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length != 2 || !args[0].equalsIgnoreCase("rollback")) {
+            return false;
+        }
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage("§cOnly players can rollback their island.");
+            return true;
+        }
+        if (!player.hasPermission("voidworldgenerator.rollback")) {
+            player.sendMessage("§cYou don't have the permission to rollback your island.");
+            return true;
+        }
+        if (islandBackupManager == null) {
+            player.sendMessage("§cIsland backups are disabled.");
+            return true;
+        }
+        long duration = IslandBackupManager.parseDuration(args[1]);
+        if (duration < 0) {
+            player.sendMessage("§cInvalid time: " + args[1] + " (examples: 30m, 2h, 1d)");
+            return true;
+        }
+        islandBackupManager.rollback(player, System.currentTimeMillis() - duration);
+        return true;
+    }
+
+    // MONITOR so that logins denied by other plugins are not prefetched
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            islandManager.prefetchIslandChunks(event.getUniqueId());
+        }
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        islandManager.releaseIslandChunks(event.getPlayer().getUniqueId());
+    }
+
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
+        islandManager.onPlayerJoin(player.getUniqueId());
 
         getLogger().info("§e[DEBUG] Player joined: " + player.getName());
         getLogger().info("§e[DEBUG] Has played before: " + player.hasPlayedBefore());